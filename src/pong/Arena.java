@@ -0,0 +1,253 @@
+package pong;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Class representing the court in arena mode, where thousands of balls and many paddles share one court. All entity
+ * state is kept in primitive arrays (structure-of-arrays) so the update loops run over contiguous memory and can be
+ * vectorized by the JIT. Ball and Paddle collisions go through a uniform grid instead of pairwise Rectangle tests.
+ */
+public class Arena {
+    public static final int BALL_SIZE = 32;
+    public static final int PADDLE_WIDTH = 32;
+    public static final int PADDLE_HEIGHT = 128;
+    private static final int CELL_SIZE = 64;    // Side of a grid cell, at least BALL_SIZE
+    private static final int COLUMNS = (Renderer.WIDTH + CELL_SIZE - 1) / CELL_SIZE;
+    private static final int ROWS = (Renderer.HEIGHT + CELL_SIZE - 1) / CELL_SIZE;
+    private static final double BOUNCE_ANGLE = (5 * Math.PI) / 15;  // Same bounce as in Game
+    private static final double START_SPEED = 7;
+    private static final double MAX_SPEED = 12;
+    private static final double SPEED_INCREASE = 0.3;
+    private static final double PADDLE_SPEED = 4;
+
+    // Ball state, one element per ball
+    private final int ballCount;
+    private final double[] ballX;
+    private final double[] ballY;
+    private final double[] ballVelocityX;
+    private final double[] ballVelocityY;
+    private final double[] ballSpeed;
+
+    // Paddle state, one element per paddle
+    private final int paddleCount;
+    private final double[] paddleX;
+    private final double[] paddleY;
+    private final double[] paddleVelocityY;
+
+    // Broad phase grid. Paddles in cell c are cellPaddles[cellStart[c]] to cellPaddles[cellStart[c + 1] - 1].
+    private final int[] cellStart;
+    private final int[] cellPaddles;
+
+    private BufferedImage ballImage;
+    private BufferedImage paddleImage;
+
+    public Arena(int ballCount, int paddleCount) {
+        this.ballCount = ballCount;
+        this.paddleCount = paddleCount;
+        ballX = new double[ballCount];
+        ballY = new double[ballCount];
+        ballVelocityX = new double[ballCount];
+        ballVelocityY = new double[ballCount];
+        ballSpeed = new double[ballCount];
+        paddleX = new double[paddleCount];
+        paddleY = new double[paddleCount];
+        paddleVelocityY = new double[paddleCount];
+        cellStart = new int[COLUMNS * ROWS + 1];
+        // A paddle expanded by the ball size covers at most this many cells
+        int cellsPerPaddle = ((PADDLE_WIDTH + BALL_SIZE) / CELL_SIZE + 2) * ((PADDLE_HEIGHT + BALL_SIZE) / CELL_SIZE + 2);
+        cellPaddles = new int[paddleCount * cellsPerPaddle];
+        setStartPositions(new Random());
+    }
+
+    /**
+     * Place the paddles in evenly spaced columns and the balls at random positions with random directions.
+     *
+     * @param random Random
+     */
+    public void setStartPositions(Random random) {
+        for (int i = 0; i < paddleCount; i++) {
+            paddleX[i] = (i + 1) * (Renderer.WIDTH - PADDLE_WIDTH) / (double) (paddleCount + 1);
+            paddleY[i] = random.nextInt(Renderer.HEIGHT - PADDLE_HEIGHT);
+            paddleVelocityY[i] = random.nextBoolean() ? PADDLE_SPEED : -PADDLE_SPEED;
+        }
+        for (int i = 0; i < ballCount; i++) {
+            ballX[i] = random.nextInt(Renderer.WIDTH - BALL_SIZE);
+            ballY[i] = random.nextInt(Renderer.HEIGHT - BALL_SIZE);
+            ballSpeed[i] = START_SPEED;
+            ballVelocityX[i] = random.nextBoolean() ? START_SPEED : -START_SPEED;
+            ballVelocityY[i] = random.nextInt(13) - 6;
+        }
+    }
+
+    /**
+     * Load the images used when drawing. Not needed when the Arena is only simulated.
+     */
+    public void loadImages() {
+        try {
+            ballImage = ImageIO.read(getClass().getResourceAsStream("/ball.png"));
+            paddleImage = ImageIO.read(getClass().getResourceAsStream("/paddle.png"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Update movement and check for collisions for all balls and paddles.
+     */
+    public void update() {
+        updatePaddles();
+        buildGrid();
+        updateBalls();
+        ballPaddleCollisions();
+    }
+
+    /**
+     * Move the paddles up and down, turning at the top and bottom of the court.
+     */
+    private void updatePaddles() {
+        double maxY = Renderer.HEIGHT - PADDLE_HEIGHT;
+        for (int i = 0; i < paddleCount; i++) {
+            double y = paddleY[i] + paddleVelocityY[i];
+            double velocity = paddleVelocityY[i];
+            if (y < 0 || y > maxY) {
+                velocity = -velocity;
+            }
+            paddleY[i] = Math.min(Math.max(y, 0), maxY);
+            paddleVelocityY[i] = velocity;
+        }
+    }
+
+    /**
+     * Move the balls and bounce them on all four walls. The loops are kept branch free so they can be vectorized.
+     */
+    private void updateBalls() {
+        double maxX = Renderer.WIDTH - BALL_SIZE;
+        double maxY = Renderer.HEIGHT - BALL_SIZE;
+        for (int i = 0; i < ballCount; i++) {
+            ballX[i] += ballVelocityX[i];
+            ballY[i] += ballVelocityY[i];
+        }
+        for (int i = 0; i < ballCount; i++) {
+            double x = ballX[i];
+            double y = ballY[i];
+            double clampedX = Math.min(Math.max(x, 0), maxX);
+            double clampedY = Math.min(Math.max(y, 0), maxY);
+            ballVelocityX[i] = clampedX != x ? -ballVelocityX[i] : ballVelocityX[i];
+            ballVelocityY[i] = clampedY != y ? -ballVelocityY[i] : ballVelocityY[i];
+            ballX[i] = clampedX;
+            ballY[i] = clampedY;
+        }
+    }
+
+    /**
+     * Sort the paddles into the grid cells. Each paddle is expanded up and to the left by the ball size, so a ball
+     * only has to look in the single cell containing its top left corner to find every paddle it can touch.
+     */
+    private void buildGrid() {
+        int cells = COLUMNS * ROWS;
+        for (int c = 0; c <= cells; c++) {
+            cellStart[c] = 0;
+        }
+
+        // Count paddles per cell, then turn the counts into start offsets
+        for (int i = 0; i < paddleCount; i++) {
+            int firstColumn = column(paddleX[i] - BALL_SIZE);
+            int lastColumn = column(paddleX[i] + PADDLE_WIDTH);
+            int firstRow = row(paddleY[i] - BALL_SIZE);
+            int lastRow = row(paddleY[i] + PADDLE_HEIGHT);
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int c = firstColumn; c <= lastColumn; c++) {
+                    cellStart[r * COLUMNS + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+
+        // Fill the cells, using cellStart as insertion cursor and shifting it back afterwards
+        for (int i = 0; i < paddleCount; i++) {
+            int firstColumn = column(paddleX[i] - BALL_SIZE);
+            int lastColumn = column(paddleX[i] + PADDLE_WIDTH);
+            int firstRow = row(paddleY[i] - BALL_SIZE);
+            int lastRow = row(paddleY[i] + PADDLE_HEIGHT);
+            for (int r = firstRow; r <= lastRow; r++) {
+                for (int c = firstColumn; c <= lastColumn; c++) {
+                    cellPaddles[cellStart[r * COLUMNS + c]++] = i;
+                }
+            }
+        }
+        for (int c = cells; c > 0; c--) {
+            cellStart[c] = cellStart[c - 1];
+        }
+        cellStart[0] = 0;
+    }
+
+    /**
+     * Check every ball against the paddles in its grid cell and bounce it the same way as in Game.
+     */
+    private void ballPaddleCollisions() {
+        for (int i = 0; i < ballCount; i++) {
+            double x = ballX[i];
+            double y = ballY[i];
+            int cell = row(y) * COLUMNS + column(x);
+            int end = cellStart[cell + 1];
+
+            for (int k = cellStart[cell]; k < end; k++) {
+                int p = cellPaddles[k];
+                double px = paddleX[p];
+                double py = paddleY[p];
+
+                if (x < px + PADDLE_WIDTH && x + BALL_SIZE > px && y < py + PADDLE_HEIGHT && y + BALL_SIZE > py) {
+                    double ballCenter = y + BALL_SIZE / 2;
+                    double paddleIntersect = (py + PADDLE_HEIGHT / 2) - ballCenter;
+                    double angle = (paddleIntersect / (PADDLE_HEIGHT / 2)) * BOUNCE_ANGLE;
+                    double speed = ballSpeed[i];
+                    boolean fromLeft = x + BALL_SIZE / 2 < px + PADDLE_WIDTH / 2;
+
+                    ballVelocityX[i] = fromLeft ? speed * -Math.cos(angle) : speed * Math.cos(angle);
+                    ballVelocityY[i] = speed * -Math.sin(angle);
+                    ballSpeed[i] = Math.min(speed + SPEED_INCREASE, MAX_SPEED);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static int column(double x) {
+        return Math.min(Math.max((int) x / CELL_SIZE, 0), COLUMNS - 1);
+    }
+
+    private static int row(double y) {
+        return Math.min(Math.max((int) y / CELL_SIZE, 0), ROWS - 1);
+    }
+
+    /**
+     * Draw all paddles and balls.
+     *
+     * @param g Graphics2D
+     */
+    public void draw(Graphics2D g) {
+        Renderer renderer = Renderer.getInstance();
+        for (int i = 0; i < paddleCount; i++) {
+            renderer.drawSprite(g, paddleImage, paddleX[i], paddleY[i]);
+        }
+        for (int i = 0; i < ballCount; i++) {
+            renderer.drawSprite(g, ballImage, ballX[i], ballY[i]);
+        }
+    }
+
+    // Getters
+
+    public int getBallCount() {
+        return ballCount;
+    }
+
+    public int getPaddleCount() {
+        return paddleCount;
+    }
+}
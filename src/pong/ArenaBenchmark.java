@@ -0,0 +1,55 @@
+package pong;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many ball updates per second and core the Arena manages. Every thread simulates its own Arena without
+ * drawing, so the result is the simulation throughput only.
+ *
+ * Usage: ArenaBenchmark [balls] [paddles] [threads] [seconds]
+ */
+public class ArenaBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        final int balls = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int paddles = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        final int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        final AtomicLong totalUpdates = new AtomicLong();
+
+        System.out.println("Balls: " + balls + ", paddles: " + paddles + ", threads: " + threads);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    Arena arena = new Arena(balls, paddles);
+
+                    // Warm up so the JIT has compiled the update loops before measuring
+                    long warmupEnd = System.nanoTime() + 2000000000L;
+                    while (System.nanoTime() < warmupEnd) {
+                        arena.update();
+                    }
+
+                    long ticks = 0;
+                    long end = System.nanoTime() + seconds * 1000000000L;
+                    while (System.nanoTime() < end) {
+                        arena.update();
+                        ticks++;
+                    }
+                    totalUpdates.addAndGet(ticks * balls);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // More threads than cores share the cores, so only the cores actually used count
+        int cores = Math.min(threads, Runtime.getRuntime().availableProcessors());
+        double updatesPerSecond = totalUpdates.get() / (double) seconds;
+        System.out.printf("Ball updates per second: %.0f%n", updatesPerSecond);
+        System.out.printf("Ball updates per second per core: %.0f (%d cores)%n", updatesPerSecond / cores, cores);
+    }
+}
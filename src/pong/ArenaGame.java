@@ -0,0 +1,84 @@
+package pong;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Class running arena mode locally. The game loop works the same way as in Game but updates and draws an Arena
+ * instead of one Ball and two Paddles.
+ */
+public class ArenaGame implements Runnable {
+    private final Renderer renderer = Renderer.getInstance();
+    private Thread thread;  // Used to start the game loop
+    private volatile boolean running;   // Used to stop the game loop
+    private Arena arena;
+    private BufferedImage background;
+
+    public ArenaGame(int ballCount, int paddleCount) {
+        arena = new Arena(ballCount, paddleCount);
+        arena.loadImages();
+        try {
+            background = ImageIO.read(getClass().getResourceAsStream("/court.png"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start the game loop.
+     */
+    public synchronized void start() {
+        if (thread == null || !running) {
+            running = true;
+            thread = new Thread(this);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the game loop.
+     */
+    public synchronized void stop() {
+        running = false;
+    }
+
+    /**
+     * Game loop in which the arena is updated and drawn.
+     */
+    @Override
+    public void run() {
+        int fps = 60;
+        long targetTime = 1000000000 / fps; // Target time in nanoseconds
+
+        while (running) {
+            long startTime = System.nanoTime(); // Start time for frame
+
+            arena.update();
+            draw(renderer.getGraphics2D());
+            renderer.render();
+
+            long frameTime = System.nanoTime() - startTime; // Time that frame has taken so far
+
+            // If frame is to fast, sleep to achieve target fps
+            if (frameTime < targetTime) {
+                try {
+                    Thread.sleep((targetTime - frameTime) / 1000000);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw the arena.
+     *
+     * @param g Graphics2D
+     */
+    private void draw(Graphics2D g) {
+        renderer.drawSprite(g, background, 0, 0);
+        arena.draw(g);
+    }
+}
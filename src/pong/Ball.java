@@ -87,7 +87,7 @@ public class Ball {
      * @param g Graphics2D
      */
     public void draw(Graphics2D g) {
-        g.drawImage(image, (int) x, (int) y, null);
+        Renderer.getInstance().drawSprite(g, image, x, y);
     }
 
     /**
@@ -134,6 +134,10 @@ public class Ball {
         return height;
     }
 
+    public double getVelocityX() {
+        return velocityX;
+    }
+
     public double getSpeed() {
         return speed;
     }
@@ -0,0 +1,65 @@
+package pong;
+
+/**
+ * Class estimating the offset between the local clock and the clock of the other player, in the same way as NTP. The
+ * client sends its time, the server answers with the client time and its own time, and the offset is calculated
+ * assuming the message took equally long in both directions. The sample with the shortest round trip among the
+ * latest samples is used, since it has the smallest error.
+ */
+public class ClockSync {
+    private static final int SAMPLES = 8;
+    private final long[] offsets = new long[SAMPLES];
+    private final long[] roundTripTimes = new long[SAMPLES];
+    private int sampleCount;
+    private volatile boolean hasSample;
+    private volatile long offset;   // Remote clock minus local clock in nanoseconds
+    private volatile long roundTripTime;
+
+    /**
+     * Add a sample from a clock synchronization answer.
+     *
+     * @param localSendTime long, local time when the request was sent
+     * @param remoteTime long, remote time when the request was answered
+     * @param localReceiveTime long, local time when the answer was received
+     */
+    public synchronized void addSample(long localSendTime, long remoteTime, long localReceiveTime) {
+        long rtt = localReceiveTime - localSendTime;
+        int index = sampleCount % SAMPLES;
+        offsets[index] = remoteTime - (localSendTime + rtt / 2);
+        roundTripTimes[index] = rtt;
+        sampleCount++;
+
+        int best = 0;
+        for (int i = 1; i < Math.min(sampleCount, SAMPLES); i++) {
+            if (roundTripTimes[i] < roundTripTimes[best]) {
+                best = i;
+            }
+        }
+        offset = offsets[best];
+        roundTripTime = roundTripTimes[best];
+        hasSample = true;
+    }
+
+    /**
+     * Check if any sample has been added. Until then the offset is unknown.
+     *
+     * @return boolean, true if the clocks have been synchronized
+     */
+    public boolean isSynchronized() {
+        return hasSample;
+    }
+
+    /**
+     * Convert a local time to the remote clock.
+     *
+     * @param localTime long, local time in nanoseconds
+     * @return long with the remote time in nanoseconds
+     */
+    public long toRemoteTime(long localTime) {
+        return localTime + offset;
+    }
+
+    public long getRoundTripTime() {
+        return roundTripTime;
+    }
+}
@@ -1,18 +1,25 @@
 package pong;
 
 import javax.imageio.ImageIO;
+import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.util.List;
 
 /**
  * Class containing the game logic. The game loop is in the run-method which calls the update- and draw-methods
  * every frame to update movement and graphics.
  */
-public class Game implements Runnable, KeyListener {
+public class Game implements Runnable, KeyListener, NetworkGame {
     public static final Renderer renderer = Renderer.getInstance();
+    private static final int FPS = 60;
+    private static final int HISTORY_TICKS = 64;    // Ticks of history kept for lag compensation, about one second
+    private static final int CLOCK_SYNC_INTERVAL = 30;  // Ticks between clock synchronization requests
+    private static final int TOP_PLAYERS = 5;   // Players shown in the rankings after a match
+    private static final int WINNING_SCORE = 10;    // Score that finishes a match
     private Thread thread;  // Used to start the game loop
     private volatile boolean running;   // Used to stop the game loop
     private Paddle paddle1;
@@ -20,9 +27,14 @@ public class Game implements Runnable, KeyListener {
     private Ball ball;
     private BufferedImage background;
     private NetworkComponent network;   // Contains all network related methods
+    private ResultsStore resultsStore;  // Used by the server to save match results, null if it could not be opened
+    private final InputQueue input = new InputQueue();  // Key events from the event thread, applied every tick
+    private LagCompensator lagCompensator;  // Used by the server to judge the client Paddle on what the client saw
+    private long tick;  // Number of the current tick
+    private long rewindLimitTick;   // Ball history before this tick is not the Ball in play, set at serves and late hits
     private final double BOUNCE_ANGLE = (5 * Math.PI) / 15; // Used to set Balls directions when colliding with Paddle
-    private int serverScore;
-    private int clientScore;
+    private volatile int serverScore;   // Decided by the server, received by the client
+    private volatile int clientScore;
     private Font scoreFont;
 
     public Game() {
@@ -32,6 +44,16 @@ public class Game implements Runnable, KeyListener {
         // If there is no server to connect to, start one
         if (!network.connect()) {
             network.startServer();
+            try {
+                resultsStore = new ResultsStore(new File(System.getProperty("user.home"), ".pong"));
+                resultsStore.setResultsListener(new ResultsStore.ResultsListener() {
+                    public void resultsWritten(Leaderboard leaderboard) {
+                        showRankings(leaderboard);
+                    }
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 
@@ -45,6 +67,7 @@ public class Game implements Runnable, KeyListener {
         paddle2 = new Paddle();
         paddle2.setPosition(Renderer.WIDTH - (20 + paddle1.getWidth()), Renderer.HEIGHT / 2 - paddle1.getHeight() / 2);
         ball = new Ball();
+        lagCompensator = new LagCompensator(HISTORY_TICKS, 1000000000 / FPS);
         serverScore = 0;
         clientScore = 0;
         scoreFont = new Font("Arial", Font.BOLD, 40);
@@ -78,8 +101,7 @@ public class Game implements Runnable, KeyListener {
      */
     @Override
     public void run() {
-        int fps = 60;
-        long targetTime = 1000000000 / fps; // Target time in nanoseconds
+        long targetTime = 1000000000 / FPS; // Target time in nanoseconds
 
         while (running) {
             long startTime = System.nanoTime(); // Start time for frame
@@ -87,9 +109,27 @@ public class Game implements Runnable, KeyListener {
             update();
             draw(renderer.getGraphics2D());
             renderer.render();
+            input.frameShown(System.nanoTime());
+
+            if (tick % FPS == 0) {
+                showInputLatency();
+            }
 
             if (network.isServer() && !network.isClientConnected()) {
                 network.listenForClient();
+                if (network.isClientConnected()) {
+                    JOptionPane.showMessageDialog(
+                            renderer,
+                            "Client connected, click OK to start.",
+                            "Client connected",
+                            JOptionPane.INFORMATION_MESSAGE
+                    );
+                    try {
+                        Thread.sleep(2000); // Delay two seconds before starting game
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
             }
 
             long frameTime = System.nanoTime() - startTime; // Time that frame has taken so far
@@ -109,19 +149,41 @@ public class Game implements Runnable, KeyListener {
      * Update movement and check for collisions.
      */
     private void update() {
+        tick++;
+
+        // Apply the key presses since the last tick to your paddle before anything moves
+        if (network.isServer()) {
+            input.applyInputs(paddle1);
+        } else {
+            input.applyInputs(paddle2);
+        }
+
         paddle1.update();
         paddle2.update();
 
         // Ball should only be updated if player is server. Ball position is then sent to client player.
         if (network.isServer()) {
+            lagCompensator.startTick(tick, System.nanoTime());
             ball.update();
+            lagCompensator.recordBall(ball);
             network.sendBallPosition();
+        } else if (tick % CLOCK_SYNC_INTERVAL == 0) {
+            network.sendClockSyncRequest();
         }
 
         network.sendPaddlePosition();   // Send your paddle position to the other player
         paddleBallCollision(paddle1, true);
-        paddleBallCollision(paddle2, false);
-        updateScore();
+
+        if (network.isServer() && lagCompensator.hasPaddleHistory()) {
+            compensatedPaddleBallCollision(paddle2);
+        } else {
+            paddleBallCollision(paddle2, false);
+        }
+
+        // The server decides the score and sends it to the client
+        if (network.isServer()) {
+            updateScore();
+        }
     }
 
     /**
@@ -132,33 +194,145 @@ public class Game implements Runnable, KeyListener {
      */
     private void paddleBallCollision(Paddle paddle, boolean isLeft) {
         if (paddle.getRectangle().intersects(ball.getRectangle())) {
-            double ballCenter = ball.getY() + ball.getHeight() / 2;
-            double paddleIntersect = (paddle.getY() + paddle.getHeight() / 2) - ballCenter;
-            double normalizedPaddleIntersect = (paddleIntersect / (paddle.getHeight() / 2));
-            double angle = normalizedPaddleIntersect * BOUNCE_ANGLE;
+            bounceBall(paddle.getY(), paddle.getHeight(), ball.getY(), isLeft);
+        }
+    }
 
-            if (isLeft) {
-                ball.setVelocityX(ball.getSpeed() * Math.cos(angle));
-            } else {
-                ball.setVelocityX(ball.getSpeed() * -Math.cos(angle));
+    /**
+     * Handle collisions between the client players Paddle and the Ball on the server. The Ball from the tick the
+     * client saw is tested against the Paddle position the client had when it saw that Ball, so the client is not
+     * judged on a stale Paddle position. If it was a hit, the current Ball is bounced.
+     *
+     * @param paddle Paddle to the right controlled by the client
+     */
+    private void compensatedPaddleBallCollision(Paddle paddle) {
+        long delay = lagCompensator.getDelayTicks();
+        long seenTick = tick - 2 * delay;   // Tick of the Ball the client saw
+        double paddleY = lagCompensator.getPaddleY(tick - delay);
+        double ballY = lagCompensator.getBallY(seenTick);
+        Rectangle paddleRectangle = new Rectangle((int) paddle.getX(), (int) paddleY, paddle.getWidth(),
+                paddle.getHeight());
+        Rectangle ballRectangle = new Rectangle((int) lagCompensator.getBallX(seenTick), (int) ballY, ball.getWidth(),
+                ball.getHeight());
+
+        // Only bounce a Ball that was and still is moving towards the Paddle, otherwise it has already been bounced.
+        // A Ball from before the last serve or late hit is not the Ball in play.
+        if (seenTick > rewindLimitTick && lagCompensator.getBallVelocityX(seenTick) > 0 && ball.getVelocityX() > 0
+                && paddleRectangle.intersects(ballRectangle)) {
+            bounceBall(paddleY, paddle.getHeight(), ballY, false);
+            rewindLimitTick = tick;
+
+            // Move the Ball back in front of the Paddle if it has travelled past it while the client was lagging
+            double front = paddle.getX() - ball.getWidth();
+            if (ball.getX() > front) {
+                ball.setPosition(front, ball.getY());
             }
+        }
+    }
 
-            ball.setVelocityY(ball.getSpeed() * -Math.sin(angle));
-            ball.setSpeed(ball.getSpeed() + 0.3);
+    /**
+     * Bounce the Ball off a Paddle. The angle depends on where on the Paddle the Ball hit.
+     *
+     * @param paddleY double, vertical position of the Paddle
+     * @param paddleHeight int, height of the Paddle
+     * @param ballY double, vertical position of the Ball when it hit the Paddle
+     * @param isLeft boolean, true if Paddle is to the left, false if Paddle is to the right
+     */
+    private void bounceBall(double paddleY, int paddleHeight, double ballY, boolean isLeft) {
+        double ballCenter = ballY + ball.getHeight() / 2;
+        double paddleIntersect = (paddleY + paddleHeight / 2) - ballCenter;
+        double normalizedPaddleIntersect = (paddleIntersect / (paddleHeight / 2));
+        double angle = normalizedPaddleIntersect * BOUNCE_ANGLE;
+
+        if (isLeft) {
+            ball.setVelocityX(ball.getSpeed() * Math.cos(angle));
+        } else {
+            ball.setVelocityX(ball.getSpeed() * -Math.cos(angle));
         }
+
+        ball.setVelocityY(ball.getSpeed() * -Math.sin(angle));
+        ball.setSpeed(ball.getSpeed() + 0.3);
     }
 
     /**
-     * Update the score when Ball passes through left or right border of the game window.
+     * Update the score when Ball passes through left or right border of the game window, and send the new score to
+     * the client player.
      */
     private void updateScore() {
         if (ball.getX() + ball.getWidth() < 0) {
             clientScore += 1;
-            ball.setStartPosition();
-        } else if (ball.getX() > Renderer.WIDTH) {
+        } else if (ballPassedRightBorder()) {
             serverScore += 1;
-            ball.setStartPosition();
+        } else {
+            return;
+        }
+        ball.setStartPosition();
+        rewindLimitTick = tick;
+
+        if (serverScore >= WINNING_SCORE || clientScore >= WINNING_SCORE) {
+            finishMatch();
+        }
+        network.sendScore(serverScore, clientScore);
+    }
+
+    /**
+     * Check if the Ball has passed the right border. When the client Paddle is lag compensated, the Ball the client
+     * saw is checked instead of the current Ball, so a hit that reaches the server late is credited before the point
+     * is given away.
+     *
+     * @return boolean, true if the server player scores
+     */
+    private boolean ballPassedRightBorder() {
+        if (lagCompensator.hasPaddleHistory()) {
+            long seenTick = tick - 2 * lagCompensator.getDelayTicks();
+            return seenTick > rewindLimitTick && lagCompensator.getBallX(seenTick) > Renderer.WIDTH;
+        }
+        return ball.getX() > Renderer.WIDTH;
+    }
+
+    /**
+     * Finish the match when a player has reached the winning score. The server saves the result and starts a new
+     * match from zero.
+     */
+    private void finishMatch() {
+        if (resultsStore != null) {
+            String serverName = network.getPlayerName();
+            String clientName = network.getOpponentName();
+            long time = System.currentTimeMillis();
+
+            if (serverScore > clientScore) {
+                resultsStore.record(new MatchResult(serverName, clientName, serverScore, clientScore, time));
+            } else {
+                resultsStore.record(new MatchResult(clientName, serverName, clientScore, serverScore, time));
+            }
+        }
+        serverScore = 0;
+        clientScore = 0;
+    }
+
+    /**
+     * Show the top players and the rank of both players when the result of a match has been saved.
+     *
+     * @param leaderboard Leaderboard
+     */
+    private void showRankings(Leaderboard leaderboard) {
+        StringBuilder text = new StringBuilder("Top players:\n");
+        List<Leaderboard.Entry> top = leaderboard.getTop(TOP_PLAYERS);
+        for (int i = 0; i < top.size(); i++) {
+            Leaderboard.Entry entry = top.get(i);
+            text.append(String.format("%d. %s  %d wins, %d losses\n", i + 1, entry.getName(), entry.getWins(),
+                    entry.getLosses()));
+        }
+        for (String name : new String[]{network.getPlayerName(), network.getOpponentName()}) {
+            text.append(String.format("\n%s is ranked %d of %d", name, leaderboard.getRank(name), leaderboard.size()));
         }
+
+        final String message = text.toString();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                JOptionPane.showMessageDialog(renderer, message, "Match finished", JOptionPane.INFORMATION_MESSAGE);
+            }
+        });
     }
 
     /**
@@ -167,7 +341,7 @@ public class Game implements Runnable, KeyListener {
      * @param g Graphics2D
      */
     private void draw(Graphics2D g) {
-        g.drawImage(background, 0, 0, null);
+        renderer.drawSprite(g, background, 0, 0);
         paddle1.draw(g);
         paddle2.draw(g);
         drawScore(g);
@@ -181,61 +355,88 @@ public class Game implements Runnable, KeyListener {
      */
     private void drawScore(Graphics2D g) {
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g.setFont(scoreFont);
-        g.drawString("" + serverScore, Renderer.WIDTH / 4 - 20, 50);
-        g.drawString("" + clientScore, (Renderer.WIDTH / 4) * 3 - 20, 50);
+        g.setFont(renderer.getScaledFont(scoreFont));
+        g.drawString("" + serverScore, renderer.toScreen(Renderer.WIDTH / 4 - 20), renderer.toScreen(50));
+        g.drawString("" + clientScore, renderer.toScreen((Renderer.WIDTH / 4) * 3 - 20), renderer.toScreen(50));
+    }
+
+    /**
+     * Show the input latency of the last second in the window title, so the game loop can be tuned.
+     */
+    private void showInputLatency() {
+        if (input.getLatencyCount() == 0) {
+            return;
+        }
+
+        final String title = String.format("Pong - input latency avg %.1f ms, max %.1f ms",
+                input.getAverageLatency(), input.getMaxLatency());
+        input.resetLatency();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                renderer.setTitle(title);
+            }
+        });
+    }
+
+    /**
+     * Stop the game and terminate the program when the connection to the other player is lost.
+     */
+    @Override
+    public void connectionLost() {
+        stop();
+        JOptionPane.showMessageDialog(
+                renderer,
+                "Connection was lost, program will terminate.",
+                "Connection lost.",
+                JOptionPane.ERROR_MESSAGE
+        );
+        System.exit(0);
+    }
+
+    /**
+     * Set the score received from the server player.
+     *
+     * @param serverScore int
+     * @param clientScore int
+     */
+    @Override
+    public void setScore(int serverScore, int clientScore) {
+        this.serverScore = serverScore;
+        this.clientScore = clientScore;
     }
 
     // Getters
 
+    @Override
     public Paddle getPaddle1() {
         return paddle1;
     }
 
+    @Override
     public Paddle getPaddle2() {
         return paddle2;
     }
 
+    @Override
     public Ball getBall() {
         return ball;
     }
 
+    @Override
+    public LagCompensator getLagCompensator() {
+        return lagCompensator;
+    }
+
     // Listener methods
 
     @Override
     public void keyPressed(KeyEvent e) {
-        if (e.getKeyCode() == KeyEvent.VK_UP) {
-            if (network.isServer()) {
-                paddle1.setMovingUp(true);
-            } else {
-                paddle2.setMovingUp(true);
-            }
-        }
-        if (e.getKeyCode() == KeyEvent.VK_DOWN) {
-            if (network.isServer()) {
-                paddle1.setMovingDown(true);
-            } else {
-                paddle2.setMovingDown(true);
-            }
-        }
+        input.addKeyEvent(e, true);
     }
 
     @Override
     public void keyReleased(KeyEvent e) {
-        if (e.getKeyCode() == KeyEvent.VK_UP) {
-            if (network.isServer()) {
-                paddle1.setMovingUp(false);
-            } else {
-                paddle2.setMovingUp(false);
-            }
-        }
-        if (e.getKeyCode() == KeyEvent.VK_DOWN) {
-            if (network.isServer()) {
-                paddle1.setMovingDown(false);
-            } else {
-                paddle2.setMovingDown(false);
-            }
-        }
+        input.addKeyEvent(e, false);
     }
 
     @Override
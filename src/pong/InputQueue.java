@@ -0,0 +1,141 @@
+package pong;
+
+import java.awt.event.KeyEvent;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Class passing key presses from the event thread to the game loop. The event thread only adds timestamped key
+ * events to a lock-free queue, and the game loop applies all of them in order at the start of each tick, so the Paddle
+ * state is only touched by the game thread.
+ *
+ * The events are applied in the order they happened, so the keys held at the end of the tick decide how the Paddle
+ * moves. A key that is pressed and released within the same tick still moves the Paddle for that tick if no key is held.
+ * The time from the first applied key event to the frame that shows it is measured as the input latency. The frame
+ * counts as shown when it has been flushed to the display system, so the time the display takes to light up the
+ * pixels is not included.
+ */
+public class InputQueue {
+    private final ConcurrentLinkedQueue<KeyInput> queue = new ConcurrentLinkedQueue<>();
+
+    // Only used by the game thread
+    private boolean upHeld;
+    private boolean downHeld;
+    private long pendingInputTime = -1; // Time of the first input not yet shown on screen, -1 if there is none
+    private long latencySum;
+    private long latencyMax;
+    private int latencyCount;
+
+    /**
+     * A key press or release.
+     */
+    private static class KeyInput {
+        private final int keyCode;
+        private final boolean pressed;
+        private final long time;    // Time the key was pressed or released in nanoseconds
+
+        private KeyInput(int keyCode, boolean pressed, long time) {
+            this.keyCode = keyCode;
+            this.pressed = pressed;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Add a key event. Called by the event thread. The time the event waited in the event queue is taken from its
+     * timestamp, so it is included in the input latency.
+     *
+     * @param event KeyEvent
+     * @param pressed boolean, true if the key was pressed, false if it was released
+     */
+    public void addKeyEvent(KeyEvent event, boolean pressed) {
+        int keyCode = event.getKeyCode();
+        if (keyCode == KeyEvent.VK_UP || keyCode == KeyEvent.VK_DOWN) {
+            long queued = Math.max(System.currentTimeMillis() - event.getWhen(), 0);
+            queue.offer(new KeyInput(keyCode, pressed, System.nanoTime() - queued * 1000000));
+        }
+    }
+
+    /**
+     * Apply all key events since the last tick to the Paddle. Called by the game thread at the start of a tick.
+     *
+     * @param paddle Paddle controlled by this player
+     */
+    public void applyInputs(Paddle paddle) {
+        boolean upPressed = false;  // Pressed during this tick
+        boolean downPressed = false;
+        int tapped = 0; // Key code of the last key both pressed and released during this tick, 0 if there is none
+        KeyInput input;
+
+        while ((input = queue.poll()) != null) {
+            boolean changed;
+            if (input.keyCode == KeyEvent.VK_UP) {
+                changed = upHeld != input.pressed;
+                upHeld = input.pressed;
+                upPressed |= input.pressed;
+            } else {
+                changed = downHeld != input.pressed;
+                downHeld = input.pressed;
+                downPressed |= input.pressed;
+            }
+            if (!input.pressed && (input.keyCode == KeyEvent.VK_UP ? upPressed : downPressed)) {
+                tapped = input.keyCode;
+            }
+
+            // Repeated presses from a held key do not change anything and are not measured
+            if (changed && pendingInputTime < 0) {
+                pendingInputTime = input.time;
+            }
+        }
+
+        if (upHeld || downHeld) {
+            paddle.setMovingUp(upHeld);
+            paddle.setMovingDown(downHeld);
+        } else {
+            paddle.setMovingUp(tapped == KeyEvent.VK_UP);
+            paddle.setMovingDown(tapped == KeyEvent.VK_DOWN);
+        }
+    }
+
+    /**
+     * Measure the input latency when a frame has been shown. Called by the game thread after rendering.
+     *
+     * @param time long, time the frame was flushed to the display in nanoseconds
+     */
+    public void frameShown(long time) {
+        if (pendingInputTime >= 0) {
+            long latency = time - pendingInputTime;
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+            latencyCount++;
+            pendingInputTime = -1;
+        }
+    }
+
+    /**
+     * Get the average input latency since the last reset.
+     *
+     * @return double with the latency in milliseconds, 0 if there was no input
+     */
+    public double getAverageLatency() {
+        return latencyCount == 0 ? 0 : latencySum / (latencyCount * 1e6);
+    }
+
+    /**
+     * Get the highest input latency since the last reset.
+     *
+     * @return double with the latency in milliseconds
+     */
+    public double getMaxLatency() {
+        return latencyMax / 1e6;
+    }
+
+    public int getLatencyCount() {
+        return latencyCount;
+    }
+
+    public void resetLatency() {
+        latencySum = 0;
+        latencyMax = 0;
+        latencyCount = 0;
+    }
+}
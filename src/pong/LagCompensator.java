@@ -0,0 +1,177 @@
+package pong;
+
+/**
+ * Class used by the server player to judge the client players Paddle on what the client actually saw. The server
+ * keeps a ring buffer with one slot per tick holding the Ball state and the client Paddle position for that tick.
+ *
+ * The client sees the Ball from tick k a one-way delay after it was simulated, and its Paddle position at that
+ * moment reaches the server one more one-way delay later. At tick t the server therefore tests the Ball from tick
+ * t - 2 * delay against the client Paddle from tick t - delay. Lookups read one slot, and each update fills the slots
+ * since the previous update, so the cost per tick does not depend on the latency.
+ */
+public class LagCompensator {
+    private final int capacity; // Number of ticks kept, a power of two
+    private final int mask;
+    private final long tickNanos;   // Target time for one tick
+    private final long[] tickTimes;
+    private final double[] ballX;
+    private final double[] ballY;
+    private final double[] ballVelocityX;
+    private final double[] paddleY;
+    private long currentTick = -1;
+    private long oldestTick;    // Oldest tick with a complete slot
+    private long oneWayDelay = -1;  // Smoothed delay of Paddle updates in nanoseconds, -1 until the first update
+    private long firstPaddleTick;   // Tick the first Paddle update was sent in
+    private double firstPaddleY;
+    private long lastPaddleTick;    // Tick the newest Paddle update was sent in
+    private double lastPaddleY;
+
+    public LagCompensator(int capacity, long tickNanos) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.tickNanos = tickNanos;
+        tickTimes = new long[capacity];
+        ballX = new double[capacity];
+        ballY = new double[capacity];
+        ballVelocityX = new double[capacity];
+        paddleY = new double[capacity];
+    }
+
+    /**
+     * Start a new tick.
+     *
+     * @param tick long, the new tick
+     * @param time long, server time when the tick started
+     */
+    public synchronized void startTick(long tick, long time) {
+        if (currentTick < 0) {
+            oldestTick = tick;
+        }
+        tickTimes[(int) (tick & mask)] = time;
+        currentTick = tick;
+        oldestTick = Math.max(oldestTick, tick - capacity + 1);
+    }
+
+    /**
+     * Save the Ball state after it has been updated this tick.
+     *
+     * @param ball Ball
+     */
+    public synchronized void recordBall(Ball ball) {
+        int slot = (int) (currentTick & mask);
+        ballX[slot] = ball.getX();
+        ballY[slot] = ball.getY();
+        ballVelocityX[slot] = ball.getVelocityX();
+    }
+
+    /**
+     * Save a Paddle update from the client. Updates arrive in the order they were sent, so the Paddle was at the
+     * previous position in every tick from the previous update until the tick this update was sent in. Those slots are
+     * filled in and the update is placed in the tick it was sent in. Later ticks are not filled until the next update
+     * arrives, getPaddleY gives them the newest position.
+     *
+     * @param y double, vertical position of the Paddle
+     * @param sendTime long, server time when the client sent the update
+     * @param receiveTime long, server time when the update was received
+     */
+    public synchronized void recordPaddle(double y, long sendTime, long receiveTime) {
+        if (currentTick < 0) {
+            return;
+        }
+
+        long sendTick = tickAt(sendTime);
+
+        // Ticks before the first update have no position of their own, they use the first one
+        if (oneWayDelay < 0) {
+            firstPaddleTick = sendTick;
+            firstPaddleY = y;
+            lastPaddleTick = sendTick;
+            lastPaddleY = y;
+        }
+
+        // Smooth the delay the same way TCP smooths round trip times
+        long delay = Math.max(receiveTime - sendTime, 0);
+        oneWayDelay = oneWayDelay < 0 ? delay : oneWayDelay + (delay - oneWayDelay) / 8;
+
+        for (long tick = Math.max(lastPaddleTick + 1, oldestTick); tick < sendTick; tick++) {
+            paddleY[(int) (tick & mask)] = lastPaddleY;
+        }
+        paddleY[(int) (sendTick & mask)] = y;
+        lastPaddleTick = Math.max(lastPaddleTick, sendTick);
+        lastPaddleY = y;
+    }
+
+    /**
+     * Find the tick that was running at a server time.
+     *
+     * @param time long, server time
+     * @return long with the tick, limited to the ticks in the buffer
+     */
+    private long tickAt(long time) {
+        long currentTime = tickTimes[(int) (currentTick & mask)];
+        if (time >= currentTime) {
+            return currentTick;
+        }
+        long tick = currentTick - (currentTime - time + tickNanos - 1) / tickNanos;
+        if (tick < oldestTick) {
+            return oldestTick;
+        }
+
+        // Ticks are not perfectly even, so adjust the estimate by one if needed
+        if (tick > oldestTick && tickTimes[(int) (tick & mask)] > time) {
+            tick--;
+        } else if (tick < currentTick && tickTimes[(int) ((tick + 1) & mask)] <= time) {
+            tick++;
+        }
+        return tick;
+    }
+
+    /**
+     * Get the smoothed one-way delay in whole ticks, limited so that a rewind stays inside the buffer.
+     *
+     * @return long with the delay in ticks, 0 if no Paddle update has arrived yet
+     */
+    public synchronized long getDelayTicks() {
+        if (oneWayDelay < 0) {
+            return 0;
+        }
+        long ticks = (oneWayDelay + tickNanos / 2) / tickNanos;
+        return Math.min(ticks, (currentTick - oldestTick) / 2);
+    }
+
+    /**
+     * Check if any Paddle update has been received.
+     *
+     * @return boolean, true if the buffer has Paddle positions from the client
+     */
+    public synchronized boolean hasPaddleHistory() {
+        return oneWayDelay >= 0;
+    }
+
+    // Lookups, the tick must be between the oldest tick and the current tick
+
+    public synchronized double getBallX(long tick) {
+        return ballX[(int) (tick & mask)];
+    }
+
+    public synchronized double getBallY(long tick) {
+        return ballY[(int) (tick & mask)];
+    }
+
+    public synchronized double getBallVelocityX(long tick) {
+        return ballVelocityX[(int) (tick & mask)];
+    }
+
+    public synchronized double getPaddleY(long tick) {
+        if (tick < firstPaddleTick) {
+            return firstPaddleY;
+        }
+        if (tick > lastPaddleTick) {
+            return lastPaddleY;
+        }
+        return paddleY[(int) (tick & mask)];
+    }
+}
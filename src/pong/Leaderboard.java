@@ -0,0 +1,227 @@
+package pong;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Class ranking the players by number of wins. The players are kept in a skip list where every link also stores how
+ * many players it skips, so both the top players and the rank of a single player are found in logarithmic time.
+ * Players with the same number of wins are ordered by name.
+ */
+public class Leaderboard {
+    private static final int MAX_LEVEL = 32;
+    private final Node head = new Node(null, 0, 0, MAX_LEVEL);
+    private final Map<String, Node> players = new HashMap<>();
+    private final Random random = new Random();
+    private int level = 1;  // Number of levels in use
+    private int size;
+
+    /**
+     * Node in the skip list. span[i] is the number of players passed when following next[i].
+     */
+    private static class Node {
+        private final String name;
+        private final int wins;
+        private final int losses;
+        private final Node[] next;
+        private final int[] span;
+
+        private Node(String name, int wins, int losses, int levels) {
+            this.name = name;
+            this.wins = wins;
+            this.losses = losses;
+            next = new Node[levels];
+            span = new int[levels];
+        }
+    }
+
+    /**
+     * A player on the leaderboard.
+     */
+    public static class Entry {
+        private final String name;
+        private final int wins;
+        private final int losses;
+
+        private Entry(Node node) {
+            name = node.name;
+            wins = node.wins;
+            losses = node.losses;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getLosses() {
+            return losses;
+        }
+    }
+
+    /**
+     * Add a finished match, giving the winner a win and the loser a loss.
+     *
+     * @param result MatchResult
+     */
+    public synchronized void addResult(MatchResult result) {
+        Node winner = players.get(result.getWinner());
+        setPlayer(result.getWinner(), winner == null ? 1 : winner.wins + 1, winner == null ? 0 : winner.losses);
+        Node loser = players.get(result.getLoser());
+        setPlayer(result.getLoser(), loser == null ? 0 : loser.wins, loser == null ? 1 : loser.losses + 1);
+    }
+
+    /**
+     * Set the wins and losses of a player, moving the player to the right place in the list.
+     *
+     * @param name String
+     * @param wins int
+     * @param losses int
+     */
+    public synchronized void setPlayer(String name, int wins, int losses) {
+        Node node = players.get(name);
+        if (node != null) {
+            remove(node);
+        }
+        players.put(name, insert(name, wins, losses));
+    }
+
+    /**
+     * Get the best players.
+     *
+     * @param count int, maximum number of players
+     * @return List with the players in rank order
+     */
+    public synchronized List<Entry> getTop(int count) {
+        List<Entry> top = new ArrayList<>();
+        Node node = head.next[0];
+        while (node != null && top.size() < count) {
+            top.add(new Entry(node));
+            node = node.next[0];
+        }
+        return top;
+    }
+
+    /**
+     * Get all players in rank order.
+     *
+     * @return List with the players
+     */
+    public synchronized List<Entry> getAll() {
+        return getTop(size);
+    }
+
+    /**
+     * Get the rank of a player, where the player with the most wins has rank 1.
+     *
+     * @param name String
+     * @return int with the rank, 0 if the player has not played
+     */
+    public synchronized int getRank(String name) {
+        Node node = players.get(name);
+        if (node == null) {
+            return 0;
+        }
+
+        int rank = 0;
+        Node x = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && !isBefore(node, x.next[i])) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x == node) {
+                return rank;
+            }
+        }
+        return rank;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Check if a node is ranked before another node.
+     *
+     * @param a Node
+     * @param b Node
+     * @return boolean, true if a has more wins than b or the same wins and a name that comes first
+     */
+    private static boolean isBefore(Node a, Node b) {
+        return a.wins > b.wins || (a.wins == b.wins && a.name.compareTo(b.name) < 0);
+    }
+
+    private int randomLevel() {
+        int nodeLevel = 1;
+        while (nodeLevel < MAX_LEVEL && random.nextInt(4) == 0) {
+            nodeLevel++;
+        }
+        return nodeLevel;
+    }
+
+    private Node insert(String name, int wins, int losses) {
+        Node node = new Node(name, wins, losses, randomLevel());
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+
+        // Find the last node before the new one on every level and its rank
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && isBefore(x.next[i], node)) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+
+        int nodeLevel = node.next.length;
+        if (nodeLevel > level) {
+            for (int i = level; i < nodeLevel; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = nodeLevel;
+        }
+
+        for (int i = 0; i < nodeLevel; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = (rank[0] - rank[i]) + 1;
+        }
+        for (int i = nodeLevel; i < level; i++) {
+            update[i].span[i]++;
+        }
+        size++;
+        return node;
+    }
+
+    private void remove(Node node) {
+        Node x = head;
+
+        for (int i = level - 1; i >= 0; i--) {
+            while (x.next[i] != null && isBefore(x.next[i], node)) {
+                x = x.next[i];
+            }
+            if (x.next[i] == node) {
+                x.span[i] += node.span[i] - 1;
+                x.next[i] = node.next[i];
+            } else {
+                x.span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        size--;
+    }
+}
@@ -3,6 +3,15 @@ package pong;
 public class Main {
 
     public static void main(String[] args) {
+        // "arena [balls] [paddles]" starts the local multi-ball arena mode instead of a network game
+        if (args.length > 0 && args[0].equals("arena")) {
+            int balls = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+            int paddles = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+            ArenaGame arenaGame = new ArenaGame(balls, paddles);
+            arenaGame.start();
+            return;
+        }
+
         Game game = new Game();
         game.start();
     }
@@ -0,0 +1,71 @@
+package pong;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Class representing the result of a finished match.
+ */
+public class MatchResult {
+    private final String winner;
+    private final String loser;
+    private final int winnerScore;
+    private final int loserScore;
+    private final long time;    // Time the match finished in milliseconds since the epoch
+
+    public MatchResult(String winner, String loser, int winnerScore, int loserScore, long time) {
+        this.winner = winner;
+        this.loser = loser;
+        this.winnerScore = winnerScore;
+        this.loserScore = loserScore;
+        this.time = time;
+    }
+
+    /**
+     * Write the result in the format used in the results log.
+     *
+     * @param out DataOutput
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(winner);
+        out.writeUTF(loser);
+        out.writeInt(winnerScore);
+        out.writeInt(loserScore);
+        out.writeLong(time);
+    }
+
+    /**
+     * Read a result written with write.
+     *
+     * @param in DataInput
+     * @return MatchResult
+     * @throws IOException if reading fails
+     */
+    public static MatchResult read(DataInput in) throws IOException {
+        return new MatchResult(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readLong());
+    }
+
+    // Getters
+
+    public String getWinner() {
+        return winner;
+    }
+
+    public String getLoser() {
+        return loser;
+    }
+
+    public int getWinnerScore() {
+        return winnerScore;
+    }
+
+    public int getLoserScore() {
+        return loserScore;
+    }
+
+    public long getTime() {
+        return time;
+    }
+}
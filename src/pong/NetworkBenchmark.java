@@ -0,0 +1,244 @@
+package pong;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end benchmark of the network path. A server and a client NetworkComponent are connected over loopback in
+ * the same process, and synthetic ticks send Ball and Paddle positions the same way the game loop does. Messages go
+ * through the whole path: encoding, the transport, the receiver thread, decoding and applying to Ball and Paddle.
+ *
+ * One-way latency is measured from the server sending its Paddle position until the client has applied it, and round
+ * trip latency with the clock synchronization requests sent by the client every tick. Since both ends run in the
+ * same process they share the clock.
+ *
+ * CPU per message is the CPU time of the send calls on the thread driving the ticks plus the CPU time of the two
+ * receiver threads, without the time the receivers spend polling an empty shared memory ring buffer. The polling time
+ * is reported on its own. The results are appended as a line to a CSV file.
+ *
+ * Usage: NetworkBenchmark [ticks per second] [seconds] [port] [auto|socket] [output file]
+ */
+public class NetworkBenchmark {
+    private static final int WARMUP_SECONDS = 2;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static long tick;   // Keeps counting from the warmup so the lag compensation history stays valid
+    private static long sendCpuTime;    // CPU time of the send calls in nanoseconds
+
+    /**
+     * Headless game holding the Ball and Paddles a NetworkComponent reads and writes.
+     */
+    private static class BenchmarkGame implements NetworkGame {
+        private final Paddle paddle1 = new Paddle();
+        private final Paddle paddle2 = new Paddle();
+        private final Ball ball = new Ball();
+        private final LagCompensator lagCompensator;
+
+        private BenchmarkGame(long tickNanos) {
+            lagCompensator = new LagCompensator(64, tickNanos);
+        }
+
+        public Paddle getPaddle1() {
+            return paddle1;
+        }
+
+        public Paddle getPaddle2() {
+            return paddle2;
+        }
+
+        public Ball getBall() {
+            return ball;
+        }
+
+        public LagCompensator getLagCompensator() {
+            return lagCompensator;
+        }
+
+        public void setScore(int serverScore, int clientScore) {
+            // The benchmark sends no scores
+        }
+
+        public void connectionLost() {
+            // The connection is closed when the benchmark is done
+        }
+    }
+
+    /**
+     * Collects latency samples. Both kinds of samples are recorded by the client receiver thread only.
+     */
+    private static class Samples implements NetworkComponent.LatencyListener {
+        private final long[] oneWay;
+        private final long[] roundTrip;
+        private volatile int oneWayCount;
+        private volatile int roundTripCount;
+        private volatile boolean recording;
+
+        private Samples(int capacity) {
+            oneWay = new long[capacity];
+            roundTrip = new long[capacity];
+        }
+
+        public void paddlePositionApplied(long sendTime, long applyTime) {
+            if (recording && oneWayCount < oneWay.length) {
+                oneWay[oneWayCount] = applyTime - sendTime;
+                oneWayCount++;
+            }
+        }
+
+        public void roundTripMeasured(long roundTripTime) {
+            if (recording && roundTripCount < roundTrip.length) {
+                roundTrip[roundTripCount] = roundTripTime;
+                roundTripCount++;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        boolean sharedMemory = args.length <= 3 || !args[3].equals("socket");
+        File output = new File(args.length > 4 ? args[4] : "network-benchmark.csv");
+        long tickNanos = 1000000000L / rate;
+
+        BenchmarkGame serverGame = new BenchmarkGame(tickNanos);
+        BenchmarkGame clientGame = new BenchmarkGame(tickNanos);
+        final NetworkComponent server = new NetworkComponent(serverGame, "Server", "localhost", port);
+        NetworkComponent client = new NetworkComponent(clientGame, "Client", "localhost", port);
+        server.setSharedMemoryEnabled(sharedMemory);
+        server.startServer();
+
+        Thread listener = new Thread(new Runnable() {
+            public void run() {
+                server.listenForClient();
+            }
+        });
+        listener.start();
+        if (!client.connect()) {
+            throw new IOException("Could not connect to localhost:" + port);
+        }
+        listener.join();
+
+        Samples samples = new Samples((int) Math.min((long) rate * seconds, 50000000L));
+        client.setLatencyListener(samples);
+
+        // Warm up, then measure
+        server.setMeasuringReceiveWaits(true);
+        client.setMeasuringReceiveWaits(true);
+        runTicks(server, client, serverGame, clientGame, tickNanos, WARMUP_SECONDS);
+        long messagesBefore = server.getMessagesReceived() + client.getMessagesReceived();
+        long sendCpuBefore = sendCpuTime;
+        long receiveCpuBefore = receiverCpuTime();
+        long waitCpuBefore = server.getReceiveWaitCpuTime() + client.getReceiveWaitCpuTime();
+        long startTime = System.nanoTime();
+        samples.recording = true;
+
+        runTicks(server, client, serverGame, clientGame, tickNanos, seconds);
+
+        samples.recording = false;
+        long elapsed = System.nanoTime() - startTime;
+        long sendCpu = sendCpuTime - sendCpuBefore;
+        long waitCpu = server.getReceiveWaitCpuTime() + client.getReceiveWaitCpuTime() - waitCpuBefore;
+        long receiveCpu = receiverCpuTime() - receiveCpuBefore - waitCpu;
+        long messages = server.getMessagesReceived() + client.getMessagesReceived() - messagesBefore;
+        String transport = server.getTransportName();
+        client.close();
+        server.close();
+
+        long[] oneWay = Arrays.copyOf(samples.oneWay, samples.oneWayCount);
+        long[] roundTrip = Arrays.copyOf(samples.roundTrip, samples.roundTripCount);
+        Arrays.sort(oneWay);
+        Arrays.sort(roundTrip);
+        double messagesPerSecond = messages / (elapsed / 1e9);
+        double cpuPerMessage = messages == 0 ? 0 : (double) (sendCpu + receiveCpu) / messages;
+        double waitCpuPerMessage = messages == 0 ? 0 : (double) waitCpu / messages;
+
+        System.out.println("Transport: " + transport + ", target rate: " + rate + " ticks/s");
+        System.out.printf("Messages per second: %.0f%n", messagesPerSecond);
+        System.out.printf("One-way us p50/p99/p99.9: %.1f / %.1f / %.1f%n",
+                percentile(oneWay, 50) / 1e3, percentile(oneWay, 99) / 1e3, percentile(oneWay, 99.9) / 1e3);
+        System.out.printf("Round trip us p50/p99/p99.9: %.1f / %.1f / %.1f%n",
+                percentile(roundTrip, 50) / 1e3, percentile(roundTrip, 99) / 1e3, percentile(roundTrip, 99.9) / 1e3);
+        System.out.printf("CPU per message: %.0f ns (send %.0f ns, receive %.0f ns)%n", cpuPerMessage,
+                messages == 0 ? 0 : (double) sendCpu / messages, messages == 0 ? 0 : (double) receiveCpu / messages);
+        System.out.printf("CPU polling for messages per message: %.0f ns%n", waitCpuPerMessage);
+
+        boolean newFile = !output.exists();
+        try (PrintWriter writer = new PrintWriter(new FileWriter(output, true))) {
+            if (newFile) {
+                writer.println("time,transport,rate,seconds,cores,messages_per_second,one_way_p50_ns,one_way_p99_ns,"
+                        + "one_way_p999_ns,round_trip_p50_ns,round_trip_p99_ns,round_trip_p999_ns,cpu_ns_per_message,"
+                        + "wait_cpu_ns_per_message");
+            }
+            writer.printf("%d,%s,%d,%d,%d,%.0f,%d,%d,%d,%d,%d,%d,%.0f,%.0f%n", System.currentTimeMillis(), transport, rate,
+                    seconds, Runtime.getRuntime().availableProcessors(), messagesPerSecond,
+                    percentile(oneWay, 50), percentile(oneWay, 99), percentile(oneWay, 99.9),
+                    percentile(roundTrip, 50), percentile(roundTrip, 99), percentile(roundTrip, 99.9), cpuPerMessage,
+                    waitCpuPerMessage);
+        }
+        System.out.println("Results appended to " + output.getAbsolutePath());
+    }
+
+    /**
+     * Send the same messages as the game loop at a fixed rate. Each tick the server sends the Ball and its Paddle,
+     * and the client sends its Paddle and a clock synchronization request.
+     */
+    private static void runTicks(NetworkComponent server, NetworkComponent client, BenchmarkGame serverGame,
+                                 BenchmarkGame clientGame, long tickNanos, int seconds) {
+        long lastTick = tick + seconds * (1000000000L / tickNanos);
+        long nextTick = System.nanoTime();
+
+        for (; tick < lastTick; tick++) {
+            serverGame.getLagCompensator().startTick(tick, System.nanoTime());
+            serverGame.getBall().update();
+            serverGame.getLagCompensator().recordBall(serverGame.getBall());
+            serverGame.getPaddle1().setY(tick % Renderer.HEIGHT);
+            clientGame.getPaddle2().setY(Renderer.HEIGHT - tick % Renderer.HEIGHT);
+
+            long cpuStart = THREADS.getCurrentThreadCpuTime();
+            server.sendBallPosition();
+            server.sendPaddlePosition();
+            client.sendPaddlePosition();
+            client.sendClockSyncRequest();
+            sendCpuTime += THREADS.getCurrentThreadCpuTime() - cpuStart;
+
+            // Wait for the next tick, spinning the last part to keep the rate even
+            nextTick += tickNanos;
+            long remaining = nextTick - System.nanoTime();
+            if (remaining > 100000) {
+                LockSupport.parkNanos(remaining - 50000);
+            }
+            while (System.nanoTime() < nextTick) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Get the CPU time used by the receiver threads of the server and the client.
+     *
+     * @return long with the CPU time in nanoseconds
+     */
+    private static long receiverCpuTime() {
+        long time = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(NetworkComponent.RECEIVER_THREAD_NAME)) {
+                time += Math.max(THREADS.getThreadCpuTime(thread.getId()), 0);
+            }
+        }
+        return time;
+    }
+}
@@ -10,54 +10,110 @@ import java.util.regex.Pattern;
  * Class containing the network part of the game.
  */
 public class NetworkComponent {
-    private Game game;  // The game the network component is used in
+    public static final String RECEIVER_THREAD_NAME = "NetworkReceiver";
+    private NetworkGame game;   // The game the network component is used in
     private String host;
     private int port;
     private ServerSocket serverSocket;
-    private Socket socket;
-    private PrintWriter writer;
-    private BufferedReader reader;
-    private boolean receiving;
+    private Transport transport;    // Connection to the other player
+    private volatile boolean receiving;
     private boolean isServer;   // Indicates if the player is server or client
     private boolean clientConnected;
+    private String playerName;
+    private volatile String opponentName = "Opponent";
+    private boolean sharedMemoryEnabled = true; // Used for players on the same host if true
+    private ClockSync clockSync = new ClockSync();  // Used by the client to convert times to the server clock
+    private LatencyListener latencyListener;
+    private volatile long messagesReceived;
 
-    public NetworkComponent(Game game) {
+    public NetworkComponent(NetworkGame game) {
         this.game = game;
+        playerName = askPlayerName();
         host = getIPAddress();
         port = getPort();
     }
 
+    public NetworkComponent(NetworkGame game, String playerName, String host, int port) {
+        this.game = game;
+        this.playerName = playerName;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Interface for measuring the latency of the messages, used by NetworkBenchmark. The methods are called by the
+     * receiver thread after a message has been applied.
+     */
+    public interface LatencyListener {
+
+        /**
+         * Called when a Paddle position from the server has been applied by the client.
+         *
+         * @param sendTime long, server time when the position was sent
+         * @param applyTime long, local time when the position had been applied
+         */
+        void paddlePositionApplied(long sendTime, long applyTime);
+
+        /**
+         * Called when the client receives the answer to a clock synchronization request.
+         *
+         * @param roundTripTime long, time from sending the request to receiving the answer in nanoseconds
+         */
+        void roundTripMeasured(long roundTripTime);
+    }
+
     /**
-     * Thread listening for messages about Ball and Paddle positions. If the connection is lost, this class
-     * terminates the game.
+     * Thread listening for messages about Ball and Paddle positions. If the connection is lost, the game is told so it
+     * can terminate.
      */
     private class ReceiverThread implements Runnable {
         public void run() {
             while (receiving) {
                 try {
-                    String message; // String with information from the other player
-
-                    if ((message = reader.readLine()) != null) {
-                        if (message.startsWith("p")) {
-                            receivePaddlePosition(message.substring(1));
-                        } else if (!isServer && message.startsWith("b")) {
-                            receiveBallPosition(message.substring(1));
-                        }
+                    String message = transport.receive(); // String with information from the other player
+                    messagesReceived++;
+
+                    if (message.startsWith("p")) {
+                        receivePaddlePosition(message.substring(1));
+                    } else if (!isServer && message.startsWith("b")) {
+                        receiveBallPosition(message.substring(1));
+                    } else if (!isServer && message.startsWith("c")) {
+                        receiveScore(message.substring(1));
+                    } else if (message.startsWith("n")) {
+                        opponentName = message.substring(1);
+                    } else if (isServer && message.startsWith("s")) {
+                        answerClockSyncRequest(message.substring(1));
+                    } else if (!isServer && message.startsWith("S")) {
+                        receiveClockSyncAnswer(message.substring(1));
                     }
                 } catch (IOException e) {
-                    game.stop();
-                    JOptionPane.showMessageDialog(
-                            Game.renderer,
-                            "Connection was lost, program will terminate.",
-                            "Connection lost.",
-                            JOptionPane.ERROR_MESSAGE
-                    );
-                    System.exit(0);
+                    if (receiving) {
+                        receiving = false;
+                        game.connectionLost();
+                    }
                 }
             }
         }
     }
 
+    /**
+     * Get the player name from the user. The name is used for the match results.
+     *
+     * @return String with the name
+     */
+    private String askPlayerName() {
+        String name = JOptionPane.showInputDialog(
+                Game.renderer,
+                "Example: Player 1",
+                "Enter your name",
+                JOptionPane.QUESTION_MESSAGE
+        );
+        if (name == null || name.trim().isEmpty()) {
+            return "Player";
+        }
+        return name.trim();
+    }
+
     /**
      * Get ip-address from the user.
      *
@@ -125,16 +181,25 @@ public class NetworkComponent {
     }
 
     /**
-     * Receive message with the position of the other players Paddle.
+     * Receive message with the position of the other players Paddle. The position is followed by the time it was sent
+     * on the server clock, which the server uses for lag compensation.
      *
      * @param message String
      */
     private void receivePaddlePosition(String message) {
-        double yPos = Double.parseDouble(message);
+        long receiveTime = System.nanoTime();
+        String[] paddlePos = message.split(",");
+        double yPos = Double.parseDouble(paddlePos[0]);
         if (isServer) {
             game.getPaddle2().setY(yPos);
+            if (paddlePos.length > 1) {
+                game.getLagCompensator().recordPaddle(yPos, Long.parseLong(paddlePos[1]), receiveTime);
+            }
         } else {
             game.getPaddle1().setY(yPos);
+            if (latencyListener != null && paddlePos.length > 1) {
+                latencyListener.paddlePositionApplied(Long.parseLong(paddlePos[1]), System.nanoTime());
+            }
         }
     }
 
@@ -152,28 +217,92 @@ public class NetworkComponent {
     }
 
     /**
-     * Send the position of your Paddle to the other player. The "p" in front is so it can be distinguished from
-     * Ball positions sent with the same PrintWriter.
+     * Receive message with the score. The score is decided by the server player, so this method is needed to update
+     * the score for client player.
+     *
+     * @param message String
+     */
+    private void receiveScore(String message) {
+        String[] score = message.split(",");
+        game.setScore(Integer.parseInt(score[0]), Integer.parseInt(score[1]));
+    }
+
+    /**
+     * Server player sends the score to client player when it changes. The "c" in front is so it can be distinguished
+     * from positions sent with the same Transport.
+     *
+     * @param serverScore int
+     * @param clientScore int
+     */
+    public void sendScore(int serverScore, int clientScore) {
+        if (transport != null) {
+            transport.send("c" + serverScore + "," + clientScore);
+        }
+    }
+
+    /**
+     * Receive a clock synchronization request from the client player and answer it with the server time. The answer
+     * contains the client time from the request so the client can calculate the round trip time.
+     *
+     * @param message String with the client time
+     */
+    private void answerClockSyncRequest(String message) {
+        if (transport != null) {
+            transport.send("S" + message + "," + System.nanoTime());
+        }
+    }
+
+    /**
+     * Receive the answer to a clock synchronization request and add it as a sample to the clock synchronization.
+     *
+     * @param message String with the client time of the request and the server time of the answer
+     */
+    private void receiveClockSyncAnswer(String message) {
+        long receiveTime = System.nanoTime();
+        String[] times = message.split(",");
+        long sendTime = Long.parseLong(times[0]);
+        clockSync.addSample(sendTime, Long.parseLong(times[1]), receiveTime);
+        if (latencyListener != null) {
+            latencyListener.roundTripMeasured(receiveTime - sendTime);
+        }
+    }
+
+    /**
+     * Client player sends a clock synchronization request with its own time. The "s" in front is so it can be
+     * distinguished from positions sent with the same Transport.
+     */
+    public void sendClockSyncRequest() {
+        if (transport != null) {
+            transport.send("s" + System.nanoTime());
+        }
+    }
+
+    /**
+     * Send the position of your Paddle to the other player together with the time on the server clock. The client
+     * sends the time once its clock has been synchronized. The "p" in front is so it can be distinguished from Ball
+     * positions sent with the same Transport.
      */
     public void sendPaddlePosition() {
-        if (writer != null) {
+        if (transport != null) {
             if (isServer) {
-                writer.println("p" + game.getPaddle1().getY());
+                transport.send("p" + game.getPaddle1().getY() + "," + System.nanoTime());
+            } else if (clockSync.isSynchronized()) {
+                transport.send("p" + game.getPaddle2().getY() + "," + clockSync.toRemoteTime(System.nanoTime()));
             } else {
-                writer.println("p" + game.getPaddle2().getY());
+                transport.send("p" + game.getPaddle2().getY());
             }
         }
     }
 
     /**
      * Server player sends Ball position to client player. The "b" in front is so it can be distinguished from
-     * Paddle positions sent with the same PrintWriter.
+     * Paddle positions sent with the same Transport.
      */
     public void sendBallPosition() {
         Ball ball = game.getBall();
 
-        if (writer != null) {
-            writer.println("b" + ball.getX() + "," + ball.getY());
+        if (transport != null) {
+            transport.send("b" + ball.getX() + "," + ball.getY());
         }
     }
 
@@ -194,22 +323,28 @@ public class NetworkComponent {
      */
     public void listenForClient() {
         try {
-            socket = serverSocket.accept();
-            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
-            writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1"), true);
+            SocketTransport socketTransport = new SocketTransport(serverSocket.accept());
+            transport = socketTransport;
+
+            // The client is told which shared memory file to use, or an empty path to keep the socket. Both players only
+            // switch when the client answers that it has opened the file, otherwise they keep using the socket.
+            if (socketTransport.isLocal() && sharedMemoryEnabled) {
+                SharedMemoryTransport sharedMemoryTransport = SharedMemoryTransport.create(socketTransport);
+                socketTransport.send("m" + sharedMemoryTransport.getPath());
+                if (socketTransport.receive().equals("M")) {
+                    sharedMemoryTransport.start();
+                    transport = sharedMemoryTransport;
+                } else {
+                    sharedMemoryTransport.discard();
+                }
+            } else {
+                socketTransport.send("m");
+            }
             clientConnected = true;
+            transport.send("n" + playerName);
             startReceiverThread();
-            JOptionPane.showMessageDialog(
-                    Game.renderer,
-                    "Client connected, click OK to start.",
-                    "Client connected",
-                    JOptionPane.INFORMATION_MESSAGE
-            );
-            Thread.sleep(2000); // Delay two seconds before starting game
         } catch (IOException e) {
             e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
         }
     }
 
@@ -220,10 +355,32 @@ public class NetworkComponent {
      */
     public boolean connect() {
         try {
-            socket = new Socket(host, port);
-            reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
-            writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1"), true);
+            SocketTransport socketTransport = new SocketTransport(new Socket(host, port));
+            transport = socketTransport;
+
+            // A server on the same host sends the path of a shared memory file to use instead of the socket. The client
+            // answers whether it could open it, "M" to switch or "F" to keep the socket. The offer is only taken if the
+            // client also sees the server on this host, a remote server must not pick a local file to write to.
+            String message = socketTransport.receive();
+            if (message.startsWith("m") && message.length() > 1) {
+                SharedMemoryTransport sharedMemoryTransport = null;
+                if (socketTransport.isLocal()) {
+                    try {
+                        sharedMemoryTransport = SharedMemoryTransport.open(message.substring(1), socketTransport);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (sharedMemoryTransport != null) {
+                    socketTransport.send("M");
+                    sharedMemoryTransport.start();
+                    transport = sharedMemoryTransport;
+                } else {
+                    socketTransport.send("F");
+                }
+            }
             clientConnected = true;
+            transport.send("n" + playerName);
             startReceiverThread();
         } catch (IOException e) {
             return false;
@@ -236,10 +393,73 @@ public class NetworkComponent {
      */
     private void startReceiverThread() {
         receiving = true;
-        Thread receiverThread = new Thread(new ReceiverThread());
+        Thread receiverThread = new Thread(new ReceiverThread(), RECEIVER_THREAD_NAME);
+        receiverThread.setDaemon(true);
         receiverThread.start();
     }
 
+    /**
+     * Stop receiving and close the connection.
+     */
+    public void close() {
+        receiving = false;
+        if (transport != null) {
+            transport.close();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public void setSharedMemoryEnabled(boolean sharedMemoryEnabled) {
+        this.sharedMemoryEnabled = sharedMemoryEnabled;
+    }
+
+    public void setLatencyListener(LatencyListener latencyListener) {
+        this.latencyListener = latencyListener;
+    }
+
+    public String getTransportName() {
+        return transport == null ? "None" : transport.getClass().getSimpleName();
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    /**
+     * Start or stop measuring the CPU time the receiver thread spends polling for messages. Only the shared memory
+     * transport polls, a socket blocks without using the CPU.
+     *
+     * @param measuring boolean
+     */
+    public void setMeasuringReceiveWaits(boolean measuring) {
+        if (transport instanceof SharedMemoryTransport) {
+            ((SharedMemoryTransport) transport).setMeasuringWaits(measuring);
+        }
+    }
+
+    /**
+     * Get the CPU time the receiver thread has spent polling for messages while it was measured.
+     *
+     * @return long with the CPU time in nanoseconds, 0 for a socket
+     */
+    public long getReceiveWaitCpuTime() {
+        return transport instanceof SharedMemoryTransport ? ((SharedMemoryTransport) transport).getWaitCpuTime() : 0;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public String getOpponentName() {
+        return opponentName;
+    }
+
     public boolean isServer() {
         return isServer;
     }
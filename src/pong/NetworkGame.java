@@ -0,0 +1,28 @@
+package pong;
+
+/**
+ * Interface for the game a NetworkComponent sends and receives Ball and Paddle positions for.
+ */
+public interface NetworkGame {
+
+    Paddle getPaddle1();
+
+    Paddle getPaddle2();
+
+    Ball getBall();
+
+    LagCompensator getLagCompensator();
+
+    /**
+     * Called by the receiver thread when the client player receives the score from the server player.
+     *
+     * @param serverScore int
+     * @param clientScore int
+     */
+    void setScore(int serverScore, int clientScore);
+
+    /**
+     * Called by the receiver thread when the connection to the other player is lost.
+     */
+    void connectionLost();
+}
@@ -15,7 +15,7 @@ public class Paddle {
     private double deceleration;
     private double speed;
     private double maxSpeed;
-    private boolean movingUp;
+    private boolean movingUp;   // Set by the game thread from the InputQueue
     private boolean movingDown;
     private int width;
     private int height;
@@ -82,7 +82,7 @@ public class Paddle {
      * @param g Graphics2D
      */
     public void draw(Graphics2D g) {
-        g.drawImage(image, (int) x, (int) y, null);
+        Renderer.getInstance().drawSprite(g, image, x, y);
     }
 
     /**
@@ -121,6 +121,10 @@ public class Paddle {
         return height;
     }
 
+    public double getX() {
+        return x;
+    }
+
     public double getY() {
         return y;
     }
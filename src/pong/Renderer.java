@@ -2,40 +2,170 @@ package pong;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Singleton class rendering the game window by drawing a BufferedImage. The Graphics2D object in this class is used to
  * draw all graphics in the game.
+ *
+ * The game logic works in logical court coordinates (WIDTH x HEIGHT) no matter how large the window is. The court is
+ * scaled to fit the window, and sprites are scaled once per size change and cached, so every frame only makes 1:1
+ * copies of the cached images. The back buffer has the size of the window in device pixels, so on high-DPI displays
+ * the copy to the screen is also 1:1.
  */
 public class Renderer extends JFrame {
     private static final Renderer renderer = new Renderer();
-    public static final int WIDTH = 800;
-    public static final int HEIGHT = 600;
-    private BufferedImage image;
+    public static final int WIDTH = 800;    // Logical court width
+    public static final int HEIGHT = 600;   // Logical court height
+    private BufferedImage image;    // Back buffer with the same size as the window in device pixels
     private Graphics2D graphics2D;
+    private double scale;   // Device pixels per logical court unit
+    private double deviceScaleX;    // Device pixels per window pixel, above 1 on high-DPI displays
+    private double deviceScaleY;
+    private volatile boolean resized;   // Set by the event thread, the back buffer is recreated by the game thread
+    private final Map<BufferedImage, BufferedImage> spriteCache = new IdentityHashMap<>();
+    private final Map<Font, Font> fontCache = new IdentityHashMap<>();
 
     private Renderer() {
-        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
-        graphics2D = (Graphics2D) image.getGraphics();
         getContentPane().setPreferredSize(new Dimension(WIDTH, HEIGHT));
-        setResizable(false);
+        getContentPane().addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                resized = true;
+            }
+        });
+        setResizable(true);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         setVisible(true);
         pack();
+        resize();
     }
 
     public static Renderer getInstance() {
         return renderer;
     }
 
+    /**
+     * Recreate the back buffer for the current window size and empty the caches with scaled sprites and fonts.
+     */
+    private void resize() {
+        resized = false;
+        AffineTransform deviceTransform = getGraphicsConfiguration().getDefaultTransform();
+        deviceScaleX = deviceTransform.getScaleX();
+        deviceScaleY = deviceTransform.getScaleY();
+        int width = Math.max((int) Math.ceil(getContentPane().getWidth() * deviceScaleX), 1);
+        int height = Math.max((int) Math.ceil(getContentPane().getHeight() * deviceScaleY), 1);
+        scale = Math.min((double) width / WIDTH, (double) height / HEIGHT);
+
+        if (graphics2D != null) {
+            graphics2D.dispose();
+        }
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        graphics2D = (Graphics2D) image.getGraphics();
+
+        // Center the court in the window and keep everything drawn inside it
+        int courtWidth = toScreen(WIDTH);
+        int courtHeight = toScreen(HEIGHT);
+        graphics2D.translate((width - courtWidth) / 2, (height - courtHeight) / 2);
+        graphics2D.clipRect(0, 0, courtWidth, courtHeight);
+
+        spriteCache.clear();
+        fontCache.clear();
+    }
+
+    /**
+     * Copy the back buffer to the window. The device scaling is undone so the image is copied pixel for pixel. The
+     * drawing is flushed to the display before returning, since pipelines like X11 otherwise send it later.
+     */
     public void render() {
-        Graphics g = getGraphics();
-        g.drawImage(image, 0, getInsets().top, null);
-        g.dispose();
+        Graphics2D g = (Graphics2D) getContentPane().getGraphics();
+        if (g != null) {
+            g.scale(1 / deviceScaleX, 1 / deviceScaleY);
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Draw a sprite at a position in court coordinates. The sprite is scaled the first time it is drawn after a size
+     * change, after that the cached copy is used.
+     *
+     * @param g Graphics2D
+     * @param sprite BufferedImage in court size
+     * @param x double, horizontal position in court coordinates
+     * @param y double, vertical position in court coordinates
+     */
+    public void drawSprite(Graphics2D g, BufferedImage sprite, double x, double y) {
+        g.drawImage(getScaledSprite(sprite), toScreen(x), toScreen(y), null);
+    }
+
+    /**
+     * Get a copy of the sprite scaled to the current window size in device pixels.
+     *
+     * @param sprite BufferedImage in court size
+     * @return BufferedImage in device pixels
+     */
+    private BufferedImage getScaledSprite(BufferedImage sprite) {
+        BufferedImage scaled = spriteCache.get(sprite);
+
+        if (scaled == null) {
+            int width = Math.max(toScreen(sprite.getWidth()), 1);
+            int height = Math.max(toScreen(sprite.getHeight()), 1);
+            scaled = new BufferedImage(width, height, sprite.getTransparency() == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(sprite, 0, 0, width, height, null);
+            g.dispose();
+            spriteCache.put(sprite, scaled);
+        }
+        return scaled;
+    }
+
+    /**
+     * Get a copy of the font scaled to the current window size in device pixels.
+     *
+     * @param font Font in court size
+     * @return Font in device pixels
+     */
+    public Font getScaledFont(Font font) {
+        Font scaled = fontCache.get(font);
+
+        if (scaled == null) {
+            scaled = font.deriveFont((float) (font.getSize2D() * scale));
+            fontCache.put(font, scaled);
+        }
+        return scaled;
+    }
+
+    /**
+     * Convert a length or position in court coordinates to device pixels in the back buffer.
+     *
+     * @param value double in court coordinates
+     * @return int in device pixels
+     */
+    public int toScreen(double value) {
+        return (int) Math.round(value * scale);
     }
 
+    /**
+     * Get the Graphics2D used to draw the next frame. If the window has been resized or moved to a display with another
+     * scale since the last frame, the back buffer is recreated first.
+     *
+     * @return Graphics2D
+     */
     public Graphics2D getGraphics2D() {
+        AffineTransform deviceTransform = getGraphicsConfiguration().getDefaultTransform();
+        if (resized || deviceTransform.getScaleX() != deviceScaleX || deviceTransform.getScaleY() != deviceScaleY) {
+            resize();
+        }
         return graphics2D;
     }
 }
@@ -0,0 +1,305 @@
+package pong;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Class storing the results of finished matches. Results are appended to a log file by a writer thread, so the game
+ * loop never waits for the disk. The writer takes all results that are waiting and writes them with one forced write
+ * (group commit), and only then adds them to the Leaderboard.
+ *
+ * Every SNAPSHOT_INTERVAL results the Leaderboard is saved to a snapshot file together with the log length at that
+ * point. On startup the snapshot is loaded and only the part of the log after it is replayed.
+ *
+ * The log is locked while the store is open, so two games on the same host cannot append to it at the same time.
+ */
+public class ResultsStore {
+    private static final int SNAPSHOT_INTERVAL = 1000;  // Results between snapshots
+    private static final int MAX_BATCH = 256;
+    private static final int SNAPSHOT_MAGIC = 0x504f4e47;
+    private final File snapshotFile;
+    private final FileChannel log;
+    private final FileLock lock;    // Held until the store is closed
+    private final Leaderboard leaderboard = new Leaderboard();
+    private final BlockingQueue<MatchResult> queue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private volatile boolean running;
+    private volatile ResultsListener resultsListener;
+    private int resultsSinceSnapshot;
+
+    /**
+     * Interface for being told when results have been saved. The method is called by the writer thread.
+     */
+    public interface ResultsListener {
+
+        /**
+         * Called when a batch of results has been written to the log and added to the Leaderboard.
+         *
+         * @param leaderboard Leaderboard including the new results
+         */
+        void resultsWritten(Leaderboard leaderboard);
+    }
+
+    public ResultsStore(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        snapshotFile = new File(directory, "results.snapshot");
+        log = FileChannel.open(new File(directory, "results.log").toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        lock = tryLock(log);
+        if (lock == null) {
+            log.close();
+            throw new IOException("Results in " + directory + " are already used by another game");
+        }
+        long offset = loadSnapshot();
+        replayLog(offset);
+
+        running = true;
+        writerThread = new Thread(new WriterThread(), "ResultsWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        // Results still in the queue are written when the program exits
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                close();
+            }
+        }));
+    }
+
+    /**
+     * Thread writing queued results to the log.
+     */
+    private class WriterThread implements Runnable {
+        public void run() {
+            List<MatchResult> batch = new ArrayList<>();
+
+            while (running || !queue.isEmpty()) {
+                try {
+                    MatchResult first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    batch.clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Try to lock the log.
+     *
+     * @param log FileChannel
+     * @return FileLock, null if the log is locked by another game
+     * @throws IOException if locking fails
+     */
+    private static FileLock tryLock(FileChannel log) throws IOException {
+        try {
+            return log.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;    // Locked by another store in this program
+        }
+    }
+
+    /**
+     * Add the result of a finished match. The result is written to the log by the writer thread.
+     *
+     * @param result MatchResult
+     */
+    public void record(MatchResult result) {
+        queue.add(result);
+    }
+
+    /**
+     * Write a batch of results to the log with one forced write and add them to the Leaderboard.
+     *
+     * @param batch List with results
+     * @throws IOException if writing fails
+     */
+    private void writeBatch(List<MatchResult> batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (MatchResult result : batch) {
+            writeRecord(out, result);
+        }
+        out.flush();
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long position = log.size();
+        while (buffer.hasRemaining()) {
+            position += log.write(buffer, position);
+        }
+        log.force(false);
+
+        for (MatchResult result : batch) {
+            leaderboard.addResult(result);
+        }
+        if (resultsListener != null) {
+            resultsListener.resultsWritten(leaderboard);
+        }
+
+        resultsSinceSnapshot += batch.size();
+        if (resultsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+            writeSnapshot(position);
+            resultsSinceSnapshot = 0;
+        }
+    }
+
+    /**
+     * Write one result as a log record: the payload length, a CRC32 of the payload and the payload. The checksum is
+     * used to find a record that was only partly written when the program stopped.
+     *
+     * @param out DataOutputStream
+     * @param result MatchResult
+     * @throws IOException if writing fails
+     */
+    private static void writeRecord(DataOutputStream out, MatchResult result) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        result.write(new DataOutputStream(payload));
+        byte[] data = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        out.writeInt(data.length);
+        out.writeInt((int) crc.getValue());
+        out.write(data);
+    }
+
+    /**
+     * Save the Leaderboard and the log length it covers. The snapshot is written to a temporary file which then
+     * replaces the old snapshot, so a crash never leaves a half written snapshot.
+     *
+     * @param logOffset long, length of the log when the snapshot was taken
+     * @throws IOException if writing fails
+     */
+    private void writeSnapshot(long logOffset) throws IOException {
+        File temporary = new File(snapshotFile.getPath() + ".tmp");
+        List<Leaderboard.Entry> entries = leaderboard.getAll();
+
+        try (FileOutputStream fileOut = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(logOffset);
+            out.writeInt(entries.size());
+            for (Leaderboard.Entry entry : entries) {
+                out.writeUTF(entry.getName());
+                out.writeInt(entry.getWins());
+                out.writeInt(entry.getLosses());
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        Files.move(temporary.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Load the Leaderboard from the snapshot if there is one.
+     *
+     * @return long with the log length covered by the snapshot, 0 if there is no snapshot
+     * @throws IOException if reading fails
+     */
+    private long loadSnapshot() throws IOException {
+        if (!snapshotFile.exists()) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a results snapshot: " + snapshotFile);
+            }
+            long logOffset = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                leaderboard.setPlayer(in.readUTF(), in.readInt(), in.readInt());
+            }
+            return Math.min(logOffset, log.size());
+        }
+    }
+
+    /**
+     * Add the results in the log after the snapshot to the Leaderboard. If the last record is incomplete or damaged,
+     * the log is cut off before it.
+     *
+     * @param offset long, position in the log to start from
+     * @throws IOException if reading fails
+     */
+    private void replayLog(long offset) throws IOException {
+        long position = offset;
+        log.position(offset);
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log)));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || length > 1 << 20) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                leaderboard.addResult(MatchResult.read(new DataInputStream(new ByteArrayInputStream(data))));
+                position += 8 + length;
+                resultsSinceSnapshot++;
+            }
+        } catch (EOFException e) {
+            // End of the log
+        }
+
+        if (position < log.size()) {
+            log.truncate(position);
+        }
+    }
+
+    /**
+     * Stop the writer thread after it has written all queued results.
+     */
+    public void close() {
+        running = false;
+        try {
+            writerThread.join();
+            if (lock.isValid()) {
+                lock.release();
+            }
+            log.close();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void setResultsListener(ResultsListener resultsListener) {
+        this.resultsListener = resultsListener;
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+}
@@ -0,0 +1,280 @@
+package pong;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transport for players on the same host. Messages go through a memory-mapped file holding one ring buffer per
+ * direction, so no system calls are made when sending and receiving.
+ *
+ * Each ring buffer has one producer and one consumer. The producer writes the message and then publishes the new tail
+ * with release semantics, and the consumer reads the tail with acquire semantics before reading the message, so no
+ * locks are shared between the processes. A record is the message length as an int followed by the message bytes.
+ *
+ * The socket used to set up the connection is kept open. The players only switch to shared memory when the client player
+ * has confirmed over the socket that it could open the file. After that nothing more is sent over the socket, and it is
+ * read by a watcher thread, so when it reaches end of file the other process has closed the connection or died.
+ */
+public class SharedMemoryTransport implements Transport {
+    private static final int CAPACITY = 1 << 16;    // Bytes of message data per ring buffer, a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int HEADER = 128;  // Head and tail are on separate cache lines
+    private static final int HEAD = 0;  // Position the consumer has read to
+    private static final int TAIL = 64; // Position the producer has written to
+    private static final int CLOSED = 72;   // Set by the producer when it closes
+    private static final int RING_SIZE = HEADER + CAPACITY;
+    // Empty polls before the receiver starts yielding, spinning only helps if the other end runs on another core
+    private static final int SPIN_LIMIT = Runtime.getRuntime().availableProcessors() > 1 ? 100000 : 0;
+    private static final int YIELD_LIMIT = SPIN_LIMIT + 1000;   // Empty polls before the receiver starts parking
+    private static final long PARK_NANOS = 20000;
+    private static final long SEND_TIMEOUT = 1000000000L;   // Nanoseconds a full ring buffer is waited for
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final int out;  // Offset of the ring buffer this end writes to
+    private final int in;   // Offset of the ring buffer this end reads from
+    private final boolean owner;    // The end that created the file deletes it
+    private final SocketTransport socketTransport;  // Socket the connection was set up with, watched for end of file
+    private volatile boolean peerClosed;    // Set when the other player is gone without closing the ring buffer
+    private volatile boolean measuringWaits;    // Measure the CPU time receive spends waiting, used by benchmarks
+    private volatile long waitCpuTime;  // Only written by the receiving thread
+    private long outTail;
+    private long inHead;
+
+    private SharedMemoryTransport(File file, boolean isServer, SocketTransport socketTransport) throws IOException {
+        this.file = file;
+        this.owner = isServer;
+        this.socketTransport = socketTransport;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                LinkOption.NOFOLLOW_LINKS)) {
+            // The server has already mapped the file, so it has the full size. Mapping any other file would grow it.
+            if (!isServer && channel.size() != 2 * RING_SIZE) {
+                throw new IOException("Not a shared memory file: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 2 * RING_SIZE);
+        }
+        out = isServer ? 0 : RING_SIZE;
+        in = isServer ? RING_SIZE : 0;
+        outTail = (long) LONG.getAcquire(buffer, out + TAIL);
+        inHead = (long) LONG.getAcquire(buffer, in + HEAD);
+    }
+
+    /**
+     * Start using the shared memory after both players have agreed to switch. Starts the thread watching the socket
+     * the connection was set up with.
+     */
+    public void start() {
+        Thread watcherThread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (true) {
+                        socketTransport.receive();
+                    }
+                } catch (IOException e) {
+                    peerClosed = true;
+                }
+            }
+        }, "SharedMemoryWatcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * Create a new shared memory file that only the current user can read and write. Used by the server player, which
+     * then sends the path to the client player.
+     *
+     * @param socketTransport SocketTransport connected to the client player
+     * @return SharedMemoryTransport
+     * @throws IOException if the file could not be created
+     */
+    public static SharedMemoryTransport create(SocketTransport socketTransport) throws IOException {
+        Path path;
+        try {
+            path = Files.createTempFile("pong-", ".shm",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            path = Files.createTempFile("pong-", ".shm");   // Not a POSIX file system, the temp folder is per user
+        }
+        File file = path.toFile();
+        file.deleteOnExit();
+        try {
+            return new SharedMemoryTransport(file, true, socketTransport);
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a shared memory file created by the server player. The path comes from the other player, so only a regular
+     * file in the temp folder named like the files create makes, with the size of the ring buffers, is opened.
+     *
+     * @param path String with the path of the file
+     * @param socketTransport SocketTransport connected to the server player
+     * @return SharedMemoryTransport
+     * @throws IOException if the file is not a shared memory file or could not be opened
+     */
+    public static SharedMemoryTransport open(String path, SocketTransport socketTransport) throws IOException {
+        File file = new File(path);
+        File tempDirectory = new File(System.getProperty("java.io.tmpdir"));
+        String name = file.getName();
+
+        if (!name.startsWith("pong-") || !name.endsWith(".shm") || file.getParentFile() == null
+                || !file.getParentFile().getCanonicalFile().equals(tempDirectory.getCanonicalFile())
+                || !Files.isRegularFile(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Not a shared memory file: " + path);
+        }
+        return new SharedMemoryTransport(file, false, socketTransport);
+    }
+
+    /**
+     * Write a message to the outgoing ring buffer, waiting while it is full. Both the game loop and the receiver
+     * thread send messages, so senders in this process take turns.
+     *
+     * If the other player is gone, or has not read anything for SEND_TIMEOUT while the ring buffer is full, the message
+     * is dropped and the connection is treated as closed, so the receiver thread reports the lost connection.
+     *
+     * @param message String
+     */
+    @Override
+    public synchronized void send(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.ISO_8859_1);
+        int recordLength = 4 + bytes.length;
+        long waitStart = 0;
+
+        while (outTail + recordLength - (long) LONG.getAcquire(buffer, out + HEAD) > CAPACITY) {
+            if (isPeerClosed()) {
+                return;
+            }
+            if (waitStart == 0) {
+                waitStart = System.nanoTime();
+            } else if (System.nanoTime() - waitStart > SEND_TIMEOUT) {
+                peerClosed = true;
+                return;
+            }
+            Thread.yield();
+        }
+
+        long position = outTail;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            buffer.put(out + HEADER + (int) (position++ & MASK), (byte) (bytes.length >>> shift));
+        }
+        for (byte b : bytes) {
+            buffer.put(out + HEADER + (int) (position++ & MASK), b);
+        }
+        outTail = position;
+        LONG.setRelease(buffer, out + TAIL, position);
+    }
+
+    /**
+     * Wait for the next message in the incoming ring buffer. The receiver spins first so a message is picked up as
+     * soon as it is published, and backs off to yielding and parking when nothing arrives for a while.
+     *
+     * @return String with the message
+     * @throws IOException if the other player has closed the connection
+     */
+    @Override
+    public String receive() throws IOException {
+        int idle = 0;
+        long waitStart = -1;
+
+        while ((long) LONG.getAcquire(buffer, in + TAIL) == inHead) {
+            if (waitStart < 0 && measuringWaits) {
+                waitStart = THREADS.getCurrentThreadCpuTime();
+            }
+            if (isPeerClosed()) {
+                throw new IOException("Connection closed");
+            }
+            if (idle < SPIN_LIMIT) {
+                Thread.onSpinWait();
+                idle++;
+            } else if (idle < YIELD_LIMIT) {
+                Thread.yield();
+                idle++;
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+        }
+        if (waitStart >= 0) {
+            waitCpuTime += THREADS.getCurrentThreadCpuTime() - waitStart;
+        }
+
+        long position = inHead;
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+            length = (length << 8) | (buffer.get(in + HEADER + (int) (position++ & MASK)) & 0xff);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(in + HEADER + (int) (position++ & MASK));
+        }
+        inHead = position;
+        LONG.setRelease(buffer, in + HEAD, position);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Check if the other player has closed the connection, has died or has stopped reading.
+     *
+     * @return boolean, true if nothing more will be received
+     */
+    private boolean isPeerClosed() {
+        return peerClosed || (long) LONG.getAcquire(buffer, in + CLOSED) != 0;
+    }
+
+    /**
+     * Give up the shared memory when the client player could not open it. The socket is kept for the connection.
+     */
+    public void discard() {
+        if (owner) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public void close() {
+        LONG.setRelease(buffer, out + CLOSED, 1L);
+        socketTransport.close();
+        if (owner) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Start or stop measuring the CPU time spent polling the empty ring buffer.
+     *
+     * @param measuringWaits boolean
+     */
+    public void setMeasuringWaits(boolean measuringWaits) {
+        this.measuringWaits = measuringWaits;
+    }
+
+    /**
+     * Get the CPU time the receiving thread has spent polling the empty ring buffer while waits were measured.
+     *
+     * @return long with the CPU time in nanoseconds
+     */
+    public long getWaitCpuTime() {
+        return waitCpuTime;
+    }
+
+    public String getPath() {
+        return file.getAbsolutePath();
+    }
+}
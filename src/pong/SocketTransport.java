@@ -0,0 +1,51 @@
+package pong;
+
+import java.io.*;
+import java.net.Socket;
+
+/**
+ * Transport sending messages as lines of text over a TCP socket.
+ */
+public class SocketTransport implements Transport {
+    private Socket socket;
+    private PrintWriter writer;
+    private BufferedReader reader;
+
+    public SocketTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+        writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), "ISO-8859-1"), true);
+    }
+
+    @Override
+    public void send(String message) {
+        writer.println(message);
+    }
+
+    @Override
+    public String receive() throws IOException {
+        String message = reader.readLine();
+        if (message == null) {
+            throw new IOException("Connection closed");
+        }
+        return message;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Check if the other end of the socket is on the same host.
+     *
+     * @return boolean, true if the other player runs on this machine
+     */
+    public boolean isLocal() {
+        return socket.getInetAddress().isLoopbackAddress() || socket.getInetAddress().equals(socket.getLocalAddress());
+    }
+}
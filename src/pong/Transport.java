@@ -0,0 +1,29 @@
+package pong;
+
+import java.io.IOException;
+
+/**
+ * Interface for the connection used to send messages between the players. Messages are Strings without line breaks.
+ */
+public interface Transport {
+
+    /**
+     * Send a message to the other player.
+     *
+     * @param message String
+     */
+    void send(String message);
+
+    /**
+     * Wait for the next message from the other player.
+     *
+     * @return String with the message
+     * @throws IOException if the connection is lost or closed by the other player
+     */
+    String receive() throws IOException;
+
+    /**
+     * Close the connection.
+     */
+    void close();
+}